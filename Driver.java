@@ -1,26 +1,37 @@
 import java.util.Queue;
 import java.util.LinkedList;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * Driver class to build and analyze a filtered binary tree of strings
- * formed by concatenating two characters (like "A" and "B").
+ * formed by concatenating two characters (like "A" and "B"), or a filtered
+ * tree over k letters (like "A", "B" and "C").
  * Filters patterns based on specific allowed/restricted rules.
  */
 public class Driver {
 
-    // Stores strings that are filtered out due to pattern restrictions
-    static ArrayList<String> restrictedPatternsList = new ArrayList<>();
+    // Maximum length of the strings stored in the filtered trees
+    static final int MAX_LENGTH = 15;
 
     public static void main(String[] args) {
         String firstChar = "A";
         String secondChar = "B";
 
-        // Build filtered binary tree based on firstChar and secondChar
-        LinkedBinaryTree<String> tree = buildFilteredBinaryTree(firstChar, secondChar);
+        // Build filtered binary tree based on firstChar and secondChar;
+        // progress can be watched and the build cancelled over JMX
+        RunControl control = new RunControl();
+        control.register("Driver");
+        LinkedBinaryTree<String> tree = buildFilteredBinaryTree(firstChar, secondChar, control);
+        control.unregister();
 
         // Print the tree structure starting from the root
         printTree(tree, tree.root(), 0, "Root");
@@ -48,6 +59,11 @@ public class Driver {
         printListWithSize("Length 14", length14);
         printListWithSize("Length 13", length13);
         printListWithSize("Length 12", length12);
+
+        // Print the restricted patterns every node is actually checked against
+        System.out.println("\nRestricted patterns: " + getRestrictedPatterns().size()
+                + ", minimal antidictionary: " + getAntidictionary().size());
+        printListWithSize("Antidictionary", new ArrayList<>(getAntidictionary()));
     }
 
     /**
@@ -65,48 +81,126 @@ public class Driver {
      * ensuring that the generated strings do not match restricted patterns.
      */
     public static LinkedBinaryTree<String> buildFilteredBinaryTree(String first, String second) {
+        return buildFilteredBinaryTree(first, second, new RunControl());
+    }
+
+    /**
+     * Same as buildFilteredBinaryTree(first, second), reporting progress to 'control'.
+     * When 'control' asks the build to stop, restricted subtrees are removed from the
+     * tree built so far, so every level completed before the stop is exact.
+     */
+    public static LinkedBinaryTree<String> buildFilteredBinaryTree(String first, String second,
+                                                                   RunControl control) {
         LinkedBinaryTree<String> tree = new LinkedBinaryTree<>();
 
         if (!isTwoCharacterAlphabet(first, second) || first.isEmpty() || second.isEmpty()) {
             throw new IllegalArgumentException("Invalid input strings.");
         }
 
+        // Strings filtered out during this build
+        List<String> rejected = new ArrayList<>();
+
         Position<String> root = tree.addRoot("");
         Queue<Position<String>> queue = new LinkedList<>();
         queue.add(root);
 
         // Build tree with BFS approach
         while (!queue.isEmpty()) {
+            if (control.addNodes(1)) break;
+
             Position<String> current = queue.poll();
             String currentStr = current.getElement();
+            control.setCurrentDepth(tree.depth(current));
+            control.setCurrentLength(currentStr.length());
 
-            if (currentStr.length() < 15) {
+            if (currentStr.length() < MAX_LENGTH) {
                 // Try to append first string (e.g., "A")
-                if (currentStr.length() + first.length() <= 15) {
+                if (currentStr.length() + first.length() <= MAX_LENGTH) {
                     String leftStr = currentStr + first;
                     if (isPatternAllowed(leftStr)) {
                         Position<String> leftChild = tree.addLeft(current, leftStr);
                         queue.add(leftChild);
                     } else {
-                        restrictedPatternsList.add(leftStr);
+                        rejected.add(leftStr);
                     }
                 }
 
                 // Try to append second string (e.g., "B")
-                if (currentStr.length() + second.length() <= 15) {
+                if (currentStr.length() + second.length() <= MAX_LENGTH) {
                     String rightStr = currentStr + second;
                     if (isPatternAllowed(rightStr)) {
                         Position<String> rightChild = tree.addRight(current, rightStr);
                         queue.add(rightChild);
                     } else {
-                        restrictedPatternsList.add(rightStr);
+                        rejected.add(rightStr);
                     }
                 }
             }
         }
 
         // Remove subtrees matching restricted patterns or substrings
-        removeRestrictedSubtrees(tree);
+        removeRestrictedSubtrees(tree, tree::removeSubtree, rejected);
+
+        return tree;
+    }
+
+    /**
+     * Builds a filtered tree over k letters (e.g., "A", "B", "C"), where the i-th
+     * child of a node appends letters[i], up to strings of length maxLength.
+     * Restricted patterns are applied with their letters renamed to every pair
+     * of distinct letters of the alphabet.
+     */
+    public static LinkedTree<String> buildFilteredTree(int maxLength, String... letters) {
+        return buildFilteredTree(maxLength, new RunControl(), letters);
+    }
+
+    /**
+     * Same as buildFilteredTree(maxLength, letters), reporting progress to 'control'.
+     * When 'control' asks the build to stop, restricted subtrees are removed from the
+     * tree built so far, so every level completed before the stop is exact.
+     */
+    public static LinkedTree<String> buildFilteredTree(int maxLength, RunControl control, String... letters) {
+        LinkedTree<String> tree = new LinkedTree<>();
+
+        if (letters.length == 0 || !isAlphabetOfSize(letters.length, letters)) {
+            throw new IllegalArgumentException("Invalid input strings.");
+        }
+        for (String letter : letters) {
+            if (letter.isEmpty()) throw new IllegalArgumentException("Invalid input strings.");
+        }
+
+        List<String> restrictedPatterns = getAntidictionary(ParikhTable.alphabetOf(letters));
+
+        // Strings filtered out during this build
+        List<String> rejected = new ArrayList<>();
+
+        Position<String> root = tree.addRoot("");
+        Queue<Position<String>> queue = new LinkedList<>();
+        queue.add(root);
+
+        // Build tree with BFS approach
+        while (!queue.isEmpty()) {
+            if (control.addNodes(1)) break;
+
+            Position<String> current = queue.poll();
+            String currentStr = current.getElement();
+            control.setCurrentDepth(tree.depth(current));
+            control.setCurrentLength(currentStr.length());
+
+            for (String letter : letters) {
+                if (currentStr.length() + letter.length() > maxLength) continue;
+
+                String childStr = currentStr + letter;
+                if (isPatternAllowed(childStr, restrictedPatterns)) {
+                    queue.add(tree.addChild(current, childStr));
+                } else {
+                    rejected.add(childStr);
+                }
+            }
+        }
+
+        // Remove subtrees matching restricted patterns or substrings
+        removeRestrictedSubtrees(tree, tree::removeSubtree, rejected);
 
         return tree;
     }
@@ -115,13 +209,20 @@ public class Driver {
      * Checks if the input strings consist of only two unique characters combined.
      */
     public static boolean isTwoCharacterAlphabet(String first, String second) {
-        String combined = first + second;
+        return isAlphabetOfSize(2, first, second);
+    }
+
+    /**
+     * Checks if the input strings consist of at most k unique characters combined.
+     */
+    public static boolean isAlphabetOfSize(int k, String... letters) {
+        String combined = String.join("", letters);
         Map<Character, Integer> charCount = new HashMap<>();
 
         for (char c : combined.toCharArray()) {
             charCount.put(c, charCount.getOrDefault(c, 0) + 1);
-            if (charCount.size() > 2) {
-                System.out.println("Rejected: more than two unique characters.");
+            if (charCount.size() > k) {
+                System.out.println("Rejected: more than " + k + " unique characters.");
                 return false;
             }
         }
@@ -133,8 +234,13 @@ public class Driver {
      * their reversals, and flipped character variants.
      */
     public static boolean isPatternAllowed(String input) {
-        ArrayList<String> restrictedPatterns = getRestrictedPatterns();
+        return isPatternAllowed(input, getAntidictionary());
+    }
 
+    /**
+     * Checks if a string pattern is allowed by the given restricted patterns.
+     */
+    public static boolean isPatternAllowed(String input, List<String> restrictedPatterns) {
         // Direct match check
         if (restrictedPatterns.contains(input)) return false;
 
@@ -152,6 +258,16 @@ public class Driver {
      * Returns a comprehensive list of restricted patterns including their reversals and flipped variants.
      */
     private static ArrayList<String> getRestrictedPatterns() {
+        return getRestrictedPatterns("AB");
+    }
+
+    /**
+     * Returns the restricted patterns and their reversals, with 'A' and 'B' renamed to
+     * every ordered pair of distinct letters of 'alphabet'. Over "AB" the renamings are
+     * the identity and the A <-> B flip. Over a single letter only the patterns made of
+     * 'A' alone can occur, and they are renamed to that letter.
+     */
+    private static ArrayList<String> getRestrictedPatterns(String alphabet) {
         ArrayList<String> basePatterns = new ArrayList<>();
         Collections.addAll(basePatterns,
             "AABBBAAAB", "ABAAABBBA", "AAABABABBB", "AAABABBABB", "AAABABBBAB", 
@@ -171,90 +287,103 @@ public class Driver {
             "AABAAABAAABAB", "ABBBABBBABBBA", "AAABAAABAAABAAA"
         );
 
-        ArrayList<String> allPatterns = new ArrayList<>(basePatterns);
+        ArrayList<String> unrenamed = new ArrayList<>(basePatterns);
 
         // Add reversed patterns
         for (String p : basePatterns) {
-            allPatterns.add(new StringBuilder(p).reverse().toString());
+            unrenamed.add(new StringBuilder(p).reverse().toString());
         }
 
-        // Add flipped patterns (A <-> B)
-        for (String p : new ArrayList<>(allPatterns)) {
-            StringBuilder flipped = new StringBuilder();
-            for (char ch : p.toCharArray()) {
-                flipped.append(ch == 'A' ? 'B' : 'A');
+        // Add renamed patterns (A -> x, B -> y)
+        int k = alphabet.length();
+        if (k == 1) {
+            ArrayList<String> unary = new ArrayList<>();
+            for (String p : unrenamed) {
+                if (p.indexOf('B') < 0) unary.add(p.replace('A', alphabet.charAt(0)));
+            }
+            return unary;
+        }
+        ArrayList<String> allPatterns = new ArrayList<>(unrenamed.size() * k * (k - 1));
+        for (char x : alphabet.toCharArray()) {
+            for (char y : alphabet.toCharArray()) {
+                if (x == y) continue;
+                if (x == 'A' && y == 'B') {
+                    allPatterns.addAll(unrenamed);
+                    continue;
+                }
+                for (String p : unrenamed) {
+                    char[] renamed = p.toCharArray();
+                    for (int i = 0; i < renamed.length; i++) {
+                        renamed[i] = renamed[i] == 'A' ? x : y;
+                    }
+                    allPatterns.add(new String(renamed));
+                }
             }
-            allPatterns.add(flipped.toString());
         }
 
         return allPatterns;
     }
 
-    // Stores candidate strings matching restricted substring patterns
-    static ArrayList<String> matchedPatterns = new ArrayList<>();
+    // Minimal antidictionaries already computed, by alphabet
+    private static final Map<String, List<String>> antidictionaries = new ConcurrentHashMap<>();
 
     /**
-     * Checks if candidate string matches the given pattern by Abelian equality of segments.
-     * Returns true if candidate matches the pattern with equal counts of 'A's and 'B's in corresponding parts.
+     * Returns the minimal antidictionary equivalent to the restricted patterns over "AB".
      */
-    public static boolean matchesPattern(String candidate, String pattern) {
-        if (pattern.length() > candidate.length()) return false;
-
-        int countA = 0, countB = 0;
-        for (char c : pattern.toCharArray()) {
-            if (c == 'A') countA++;
-            else if (c == 'B') countB++;
-        }
+    public static List<String> getAntidictionary() {
+        return getAntidictionary("AB");
+    }
 
-        // Try all possible substring lengths for A and B segments
-        for (int lenA = 1; lenA <= candidate.length(); lenA++) {
-            for (int lenB = 1; lenB <= candidate.length(); lenB++) {
-                if (countA * lenA + countB * lenB != candidate.length()) continue;
-
-                String subA = null, subB = null;
-                int index = 0;
-                boolean valid = true;
-
-                for (char pChar : pattern.toCharArray()) {
-                    int segmentLength = (pChar == 'A') ? lenA : lenB;
-                    String segment = candidate.substring(index, index + segmentLength);
-
-                    if (pChar == 'A') {
-                        if (subA == null) subA = segment;
-                        else if (!(countChars(subA, 'A') == countChars(segment, 'A') &&
-                                   countChars(subA, 'B') == countChars(segment, 'B'))) {
-                            valid = false;
-                            break;
-                        }
-                    } else {
-                        if (subB == null) subB = segment;
-                        else if (!(countChars(subB, 'A') == countChars(segment, 'A') &&
-                                   countChars(subB, 'B') == countChars(segment, 'B'))) {
-                            valid = false;
-                            break;
-                        }
-                    }
-                    index += segmentLength;
-                }
+    /**
+     * Returns the minimal antidictionary equivalent to the restricted patterns over 'alphabet'.
+     * A string avoids every restricted pattern exactly when it avoids every pattern in this list.
+     */
+    public static List<String> getAntidictionary(String alphabet) {
+        return antidictionaries.computeIfAbsent(alphabet,
+                a -> Collections.unmodifiableList(minimizeAntidictionary(getRestrictedPatterns(a))));
+    }
 
-                if (valid) {
-                    matchedPatterns.add(candidate);
-                    return true;
+    /**
+     * Removes duplicates and every pattern that contains another pattern as a factor,
+     * since a string containing it already contains the shorter one.
+     * Returns the remaining patterns ordered by length, then alphabetically.
+     */
+    public static ArrayList<String> minimizeAntidictionary(Collection<String> patterns) {
+        ArrayList<String> sorted = new ArrayList<>(new TreeSet<>(patterns));
+        sorted.sort(Comparator.comparingInt(String::length));
+
+        ArrayList<String> minimal = new ArrayList<>();
+        for (String p : sorted) {
+            boolean redundant = false;
+            for (String shorter : minimal) {
+                if (shorter.length() < p.length() && p.contains(shorter)) {
+                    redundant = true;
+                    break;
                 }
             }
+            if (!redundant) minimal.add(p);
         }
-        return false;
+        return minimal;
     }
 
+    // Stores candidate strings matching restricted substring patterns
+    static ArrayList<String> matchedPatterns = new ArrayList<>();
+
     /**
-     * Helper method to count occurrences of a character in a string.
+     * Checks if candidate string matches the given pattern by Abelian equality of segments.
+     * Returns true if candidate matches the pattern with equal letter counts in corresponding parts.
      */
-    private static int countChars(String s, char c) {
-        int count = 0;
-        for (char ch : s.toCharArray()) {
-            if (ch == c) count++;
+    public static boolean matchesPattern(String candidate, String pattern) {
+        return matchesPattern(candidate, pattern, matchedPatterns);
+    }
+
+    /** Same as matchesPattern(candidate, pattern), recording a match in 'matched'. */
+    private static boolean matchesPattern(String candidate, String pattern, List<String> matched) {
+        if (Pattern.matches(candidate, pattern)) {
+            matched.add(candidate);
+            return true;
         }
-        return count;
+        return false;
     }
 
     /**
@@ -271,16 +400,19 @@ public class Driver {
     }
 
     /**
-     * Removes subtrees in the tree that match restricted patterns or contain restricted substrings.
+     * Removes subtrees in the tree that match a string rejected while it was built,
+     * or contain a string matched that way, using 'removeSubtree' to detach each one.
      */
-    private static void removeRestrictedSubtrees(LinkedBinaryTree<String> tree) {
+    private static void removeRestrictedSubtrees(Tree<String> tree, Consumer<Position<String>> removeSubtree,
+                                                 List<String> rejected) {
         ArrayList<Position<String>> nodesToRemove = new ArrayList<>();
+        List<String> matched = new ArrayList<>();
 
-        // Find nodes matching patterns in restrictedPatternsList using matchesPattern
+        // Find nodes matching the rejected strings using matchesPattern
         for (Position<String> pos : tree.positions()) {
             String element = pos.getElement();
-            for (String restricted : restrictedPatternsList) {
-                if (matchesPattern(element, restricted)) {
+            for (String restricted : rejected) {
+                if (matchesPattern(element, restricted, matched)) {
                     nodesToRemove.add(pos);
                     break;
                 }
@@ -291,7 +423,7 @@ public class Driver {
         for (Position<String> node : nodesToRemove) {
             for (Position<String> candidate : tree.positions()) {
                 if (candidate.getElement().equals(node.getElement())) {
-                    tree.removeSubtree(candidate);
+                    removeSubtree.accept(candidate);
                     break;
                 }
             }
@@ -301,7 +433,7 @@ public class Driver {
         ArrayList<Position<String>> substringRemovals = new ArrayList<>();
         for (Position<String> node : tree.positions()) {
             String element = node.getElement();
-            for (String restrictedSubstr : matchedPatterns) {
+            for (String restrictedSubstr : matched) {
                 if (element.contains(restrictedSubstr)) {
                     substringRemovals.add(node);
                     break;
@@ -312,7 +444,7 @@ public class Driver {
         for (Position<String> node : substringRemovals) {
             for (Position<String> candidate : tree.positions()) {
                 if (candidate.getElement().equals(node.getElement())) {
-                    tree.removeSubtree(candidate);
+                    removeSubtree.accept(candidate);
                     break;
                 }
             }
@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Iterator;
+
+public class LinkedTree<E> extends AbstractTree<E> {
+
+    // ---------------- nested Node class ----------------
+    protected static class Node<E> implements Position<E> {
+        private E element;                 // an element stored at this node
+        private Node<E> parent;            // a reference to the parent node (if any)
+        private List<Node<E>> children;    // references to the children, in insertion order
+
+        /** Constructs a node with the given element and parent. */
+        public Node(E e, Node<E> above) {
+            element = e;
+            parent = above;
+            children = new ArrayList<>(2);
+        }
+
+        // accessor methods
+        public E getElement() { return element; }
+
+        public Node<E> getParent() { return parent; }
+
+        public List<Node<E>> getChildren() { return children; }
+
+        // update methods
+        public void setElement(E e) { element = e; }
+
+        public void setParent(Node<E> parentNode) { parent = parentNode; }
+    }
+    // ----------- end of nested Node class -----------
+
+    /** Factory function to create a new node storing element e. */
+    protected Node<E> createNode(E e, Node<E> parent) {
+        return new Node<>(e, parent);
+    }
+
+    // LinkedTree instance variables
+    protected Node<E> root = null; // root of the tree
+    private int size = 0;          // number of nodes in the tree
+
+    // constructor
+    public LinkedTree() {}
+
+    protected Node<E> validate(Position<E> p) throws IllegalArgumentException {
+        if (!(p instanceof Node))
+            throw new IllegalArgumentException("Not valid position type");
+        Node<E> node = (Node<E>) p; // safe cast
+        if (node.getParent() == node) // our convention for defunct node
+            throw new IllegalArgumentException("p is no longer in the tree");
+        return node;
+    }
+
+    // accessor methods
+    /** Returns the number of nodes in the tree. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the root Position of the tree (or null if tree is empty). */
+    public Position<E> root() {
+        return root;
+    }
+
+    /** Returns the Position of p's parent (or null if p is root). */
+    public Position<E> parent(Position<E> p) throws IllegalArgumentException {
+        Node<E> node = validate(p);
+        return node.getParent();
+    }
+
+    /** Returns an iterable collection of the Positions representing p's children. */
+    public Iterable<Position<E>> children(Position<E> p) throws IllegalArgumentException {
+        Node<E> node = validate(p);
+        return new ArrayList<>(node.getChildren());
+    }
+
+    /** Returns the number of children of Position p. */
+    public int numChildren(Position<E> p) throws IllegalArgumentException {
+        Node<E> node = validate(p);
+        return node.getChildren().size();
+    }
+
+    /** Adds a root node storing element e to an empty tree. */
+    public Position<E> addRoot(E e) throws IllegalStateException {
+        if (!isEmpty()) throw new IllegalStateException("Tree is not empty");
+        root = createNode(e, null);
+        size = 1;
+        return root;
+    }
+
+    /** Creates a new last child of Position p storing element e; returns its Position. */
+    public Position<E> addChild(Position<E> p, E e) throws IllegalArgumentException {
+        Node<E> parent = validate(p);
+        Node<E> child = createNode(e, parent);
+        parent.getChildren().add(child);
+        size++;
+        return child;
+    }
+
+    /** Replaces the element at Position p with e and returns the replaced element. */
+    public E set(Position<E> p, E e) throws IllegalArgumentException {
+        Node<E> node = validate(p);
+        E temp = node.getElement();
+        node.setElement(e);
+        return temp;
+    }
+
+    @Override
+    public Iterable<Position<E>> positions() {
+        List<Position<E>> snapshot = new ArrayList<>();
+        if (!isEmpty())
+            preorderSubtree(root, snapshot);
+        return snapshot;
+    }
+
+    private void preorderSubtree(Node<E> p, List<Position<E>> snapshot) {
+        snapshot.add(p);
+        for (Node<E> c : p.getChildren())
+            preorderSubtree(c, snapshot);
+    }
+
+    /** Removes the entire subtree rooted at Position p. */
+    public void removeSubtree(Position<E> p) throws IllegalArgumentException {
+        Node<E> node = validate(p);
+        int removedCount = countNodes(node);
+
+        // Disconnect the node from its parent
+        if (node == root) {
+            root = null;
+        } else {
+            node.getParent().getChildren().remove(node);
+        }
+
+        clearSubtree(node);  // Help garbage collection
+        size -= removedCount;
+    }
+
+    /** Recursively counts the nodes in the subtree rooted at the given node. */
+    private int countNodes(Node<E> node) {
+        int count = 1;
+        for (Node<E> c : node.getChildren())
+            count += countNodes(c);
+        return count;
+    }
+
+    /** Recursively clears references for garbage collection. */
+    private void clearSubtree(Node<E> node) {
+        for (Node<E> c : node.getChildren())
+            clearSubtree(c);
+
+        node.setElement(null);
+        node.getChildren().clear();
+        node.setParent(node); // Mark as defunct
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        Iterable<Position<E>> positions = positions();
+        List<E> elements = new ArrayList<>();
+        for (Position<E> p : positions)
+            elements.add(p.getElement());
+        return elements.iterator();
+    }
+
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A morphism over the letters '0', '1', ..., mapping letter '0' + i to images[i].
+ * Characters outside the alphabet are dropped, as in Pattern.morphism.
+ *
+ * The incidence matrix (how often each letter occurs in each image) gives the
+ * letter counts, and so the length, of every iterate without generating it.
+ * Iterates are then generated into buffers of exactly the right size.
+ */
+public class Morphism {
+
+    private final String[] images;
+    private final long[][] incidence; // incidence[a][b] = occurrences of letter b in images[a]
+    private final long[] imageLengths; // imageLengths[a] = images[a].length(), other characters included
+
+    /** Creates the morphism mapping letter '0' + i to images[i]. */
+    public Morphism(String... images) {
+        this.images = images.clone();
+        this.incidence = new long[images.length][];
+        this.imageLengths = new long[images.length];
+        for (int a = 0; a < images.length; a++) {
+            incidence[a] = letterCounts(images[a]);
+            imageLengths[a] = images[a].length();
+        }
+    }
+
+    /** Returns the number of letters in the alphabet. */
+    public int alphabetSize() {
+        return images.length;
+    }
+
+    /** Returns how often each letter of the alphabet occurs in 's'. */
+    public long[] letterCounts(String s) {
+        long[] counts = new long[images.length];
+        for (int i = 0; i < s.length(); i++) {
+            int letter = s.charAt(i) - '0';
+            if (letter >= 0 && letter < images.length) counts[letter]++;
+        }
+        return counts;
+    }
+
+    /** Returns the letter counts of the image of a word with the given letter counts. */
+    public long[] next(long[] counts) {
+        long[] image = new long[images.length];
+        for (int a = 0; a < images.length; a++) {
+            if (counts[a] == 0) continue;
+            for (int b = 0; b < images.length; b++)
+                image[b] += counts[a] * incidence[a][b];
+        }
+        return image;
+    }
+
+    /** Returns the length of the image of a word with the given letter counts. */
+    public long imageLength(long[] counts) {
+        long length = 0;
+        for (int a = 0; a < images.length; a++)
+            length += counts[a] * imageLengths[a];
+        return length;
+    }
+
+    /**
+     * Returns the lengths of the iterates of 'w', from w itself up to and including
+     * the first iterate longer than 'limit'. If 'w' is already longer than 'limit',
+     * only its own length is returned.
+     *
+     * @throws IllegalArgumentException if the iterates never get longer than 'limit'
+     */
+    public long[] iterateLengths(String w, long limit) throws IllegalArgumentException {
+        List<Long> lengths = new ArrayList<>();
+        lengths.add((long) w.length());
+        if (w.length() > limit) return new long[] {w.length()};
+
+        // Bounded lengths mean finitely many count vectors, so one must repeat
+        Set<List<Long>> seen = new HashSet<>();
+        long[] counts = letterCounts(w);
+        while (true) {
+            long length = imageLength(counts);
+            counts = next(counts);
+            lengths.add(length);
+            if (length > limit) break;
+            if (!seen.add(boxed(counts)))
+                throw new IllegalArgumentException("Morphism " + Arrays.toString(images)
+                        + " does not grow from \"" + w + "\"; its iterates never exceed length " + limit);
+        }
+
+        long[] result = new long[lengths.size()];
+        for (int i = 0; i < result.length; i++) result[i] = lengths.get(i);
+        return result;
+    }
+
+    /** Applies the morphism once. */
+    public String apply(String old) {
+        return apply(old, (int) imageLength(letterCounts(old)));
+    }
+
+    /** Applies the morphism once, given the length of the result. */
+    public String apply(String old, int length) {
+        char[] image = new char[length];
+        int pos = 0;
+        for (int i = 0; i < old.length(); i++) {
+            int letter = old.charAt(i) - '0';
+            if (letter >= 0 && letter < images.length) {
+                String img = images[letter];
+                img.getChars(0, img.length(), image, pos);
+                pos += img.length();
+            }
+        }
+        return new String(image);
+    }
+
+    /**
+     * Returns the n-th iterate of 'w' without building the earlier ones:
+     * each letter of 'w' is expanded depth-first straight into the result.
+     */
+    public String iterate(String w, int n) {
+        if (n == 0) return w;
+
+        long[] counts = letterCounts(w);
+        for (int i = 1; i < n; i++) counts = next(counts);
+        long length = imageLength(counts);
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Iterate " + n + " of \"" + w + "\" is too long: " + length);
+
+        char[] result = new char[(int) length];
+        int pos = 0;
+
+        // Explicit stack of (letter, remaining depth), so deep iterates cannot overflow the call stack
+        int[] letters = new int[16];
+        int[] depths = new int[16];
+        int top = 0;
+        for (int i = w.length() - 1; i >= 0; i--) {
+            int letter = w.charAt(i) - '0';
+            if (letter < 0 || letter >= images.length) continue;
+            if (top == letters.length) {
+                letters = Arrays.copyOf(letters, 2 * top);
+                depths = Arrays.copyOf(depths, 2 * top);
+            }
+            letters[top] = letter;
+            depths[top++] = n;
+        }
+
+        while (top > 0) {
+            int letter = letters[--top];
+            int depth = depths[top];
+            String img = images[letter];
+
+            // The last step copies the image as is, like apply() does
+            if (depth == 1) {
+                img.getChars(0, img.length(), result, pos);
+                pos += img.length();
+                continue;
+            }
+
+            for (int i = img.length() - 1; i >= 0; i--) {
+                int child = img.charAt(i) - '0';
+                if (child < 0 || child >= images.length) continue;
+                if (top == letters.length) {
+                    letters = Arrays.copyOf(letters, 2 * top);
+                    depths = Arrays.copyOf(depths, 2 * top);
+                }
+                letters[top] = child;
+                depths[top++] = depth - 1;
+            }
+        }
+        return new String(result);
+    }
+
+    private static List<Long> boxed(long[] counts) {
+        List<Long> list = new ArrayList<>(counts.length);
+        for (long c : counts) list.add(c);
+        return list;
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.Arrays;
+
+/**
+ * Prefix sums of Parikh vectors (letter counts) for a word over a k-letter alphabet.
+ * The table is one flat int[] in which the k counts of each prefix are stored
+ * next to each other, so comparing the Parikh vectors of two factors is a
+ * single pass over two contiguous runs of k ints.
+ */
+public class ParikhTable {
+
+    private final String alphabet; // letter c of the table is alphabet.charAt(c)
+    private final int k;           // alphabet size
+    private final int length;      // length of the word
+    private final int[] prefix;    // prefix[i * k + c] = occurrences of letter c in word[0, i)
+
+    /** Builds the table of 'word' over the letters that occur in it. */
+    public ParikhTable(String word) {
+        this(word, alphabetOf(word));
+    }
+
+    /** Builds the table of 'word' over 'alphabet'; other characters are not counted. */
+    public ParikhTable(String word, String alphabet) {
+        this.alphabet = alphabet;
+        this.k = Math.max(alphabet.length(), 1);
+        this.length = word.length();
+        this.prefix = new int[(length + 1) * k];
+
+        for (int i = 0; i < length; i++) {
+            int row = i * k;
+            for (int c = 0; c < k; c++)
+                prefix[row + k + c] = prefix[row + c];
+            int c = alphabet.indexOf(word.charAt(i));
+            if (c >= 0) prefix[row + k + c]++;
+        }
+    }
+
+    /** Returns the distinct characters of the given words, in sorted order. */
+    public static String alphabetOf(String... words) {
+        char[] letters = new char[4];
+        int size = 0;
+        for (String word : words) {
+            for (int i = 0; i < word.length(); i++) {
+                char ch = word.charAt(i);
+                int c = 0;
+                while (c < size && letters[c] != ch) c++;
+                if (c == size) {
+                    if (size == letters.length) letters = Arrays.copyOf(letters, 2 * size);
+                    letters[size++] = ch;
+                }
+            }
+        }
+        Arrays.sort(letters, 0, size);
+        return new String(letters, 0, size);
+    }
+
+    /** Returns the alphabet the table counts. */
+    public String alphabet() { return alphabet; }
+
+    /** Returns the number of letters in the alphabet. */
+    public int alphabetSize() { return alphabet.length(); }
+
+    /** Returns the length of the word. */
+    public int length() { return length; }
+
+    /** Returns the number of occurrences of letter index c in word[from, to). */
+    public int count(int c, int from, int to) {
+        return prefix[to * k + c] - prefix[from * k + c];
+    }
+
+    /**
+     * Returns true if word[i, i + len) and word[j, j + len) have the same Parikh vector,
+     * i.e. are Abelian equivalent.
+     */
+    public boolean equalBlocks(int i, int j, int len) {
+        int a0 = i * k, a1 = (i + len) * k;
+        int b0 = j * k, b1 = (j + len) * k;
+
+        // Binary words are the common case; keep them to two straight-line compares
+        if (k == 2) {
+            return prefix[a1] - prefix[a0] == prefix[b1] - prefix[b0]
+                    && prefix[a1 + 1] - prefix[a0 + 1] == prefix[b1 + 1] - prefix[b0 + 1];
+        }
+
+        for (int c = 0; c < k; c++) {
+            if (prefix[a1 + c] - prefix[a0 + c] != prefix[b1 + c] - prefix[b0 + c])
+                return false;
+        }
+        return true;
+    }
+}
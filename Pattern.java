@@ -1,16 +1,35 @@
+import java.nio.file.Paths;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Pattern class contains methods to test binary strings for pattern instances,
+ * Pattern class contains methods to test strings over a k-letter alphabet for pattern instances,
  * morphism operations, and pattern matching using Abelian equality logic.
  */
 public class Pattern {
 
+    // Number of pattern windows checked between two RunControl checkpoints
+    private static final int CHECKPOINT_INTERVAL = 1024;
+
+    // method() tests iterates up to the first one longer than this
+    static final int MAX_ITERATE_LENGTH = 5000;
+
+    // Words at least this long are searched in parallel by find()
+    static final int PARALLEL_THRESHOLD = 4096;
+
     public static void main(String[] args) {
-        // Example usage:
-        ArrayList<String> matchedStrings = method("AAAAA", "0", "0001", "1110");
+        // Example usage (results are cached across runs in pattern-cache.txt,
+        // progress can be watched and the run cancelled over JMX):
+        ResultCache cache = new ResultCache(Paths.get("pattern-cache.txt"), 10000);
+        RunControl control = new RunControl();
+        control.register("Pattern");
+        ArrayList<String> matchedStrings = method("AAAAA", "0", new String[] {"0001", "1110"}, cache, control);
+        control.unregister();
 
         if (matchedStrings.isEmpty()) {
             System.out.println("No strings have an instance of the given pattern.");
@@ -22,95 +41,381 @@ public class Pattern {
      * considering Abelian equality of segments.
      */
     public static boolean test(String str, String subStr) {
-        if (!checkTwoChar(subStr) || str.length() < subStr.length()) {
-            return false;
+        return find(str, subStr) != null;
+    }
+
+    /**
+     * Finds the shortest, then leftmost, instance of 'subStr' pattern in 'str'.
+     * The pattern may use any number of variables and 'str' any alphabet.
+     * Returns the witness as {from, to}, or null if there is no instance.
+     */
+    public static int[] find(String str, String subStr) {
+        return find(str, subStr, new RunControl());
+    }
+
+    /**
+     * Same as find(str, subStr), reporting processed windows to 'control'.
+     * Returns null early if 'control' asks the search to stop; a witness found
+     * before that is still returned.
+     */
+    public static int[] find(String str, String subStr, RunControl control) {
+        if (subStr.isEmpty() || str.length() < subStr.length()) {
+            return null;
         }
 
-        String subA = "";
-        String subB = "";
-        int countSubA = 0;
-        int countSubB = 0;
+        Variables vars = new Variables(subStr);
+        ParikhTable table = new ParikhTable(str);
 
-        // Identify two unique characters in subStr
-        for (int i = 0; i < subStr.length(); i++) {
-            String charac = String.valueOf(subStr.charAt(i));
-            if (subA.isEmpty()) {
-                subA = charac;
-                countSubA++;
-            } else if (subB.isEmpty() && (!charac.equals(subA))) {
-                subB = charac;
-                countSubB++;
-            } else if (subA.equals(charac))
-                countSubA++;
-            else if (subB.equals(charac))
-                countSubB++;
+        // Single-variable patterns are Abelian powers; use the dedicated detector
+        if (vars.size() == 1) {
+            if (str.length() >= PARALLEL_THRESHOLD)
+                return findAbelianPowerParallel(str, table, subStr.length(), ForkJoinPool.commonPool(), control);
+            return findAbelianPower(str, table, subStr.length(), control);
         }
 
-        if (countSubA == 0 && countSubB == 0) return false;
+        if (str.length() >= PARALLEL_THRESHOLD)
+            return findParallel(str, subStr, table, ForkJoinPool.commonPool(), control);
 
+        int[] lengths = new int[vars.size()];
+        int unreported = 0;
         for (int i = subStr.length(); i <= str.length(); i++) {
             for (int j = 0; j <= str.length() - i; j++) {
-                String candidate = str.substring(j, j + i);
-
-                for (int lenA = 1; lenA <= candidate.length(); lenA++) {
-                    for (int lenB = 1; lenB <= candidate.length(); lenB++) {
-                        if (countSubA * lenA + countSubB * lenB != candidate.length())
-                            continue;
-
-                        int index = 0;
-                        String valA = null;
-                        String valB = null;
-                        boolean valid = true;
-
-                        for (int k = 0; k < subStr.length(); k++) {
-                            String ch = String.valueOf(subStr.charAt(k));
-                            int len = ch.equals(subA) ? lenA : lenB;
-
-                            if (index + len > candidate.length()) {
-                                valid = false;
-                                break;
-                            }
-
-                            String part = candidate.substring(index, index + len);
-
-                            if (ch.equals(subA)) {
-                                if (valA == null) valA = part;
-                                else if (!((countChars(valA, '0') == countChars(part, '0'))&& (countChars(valA, '1') == countChars(part, '1'))))  {
-                                    valid = false;
-                                    break;
-                                }
-                            } else {
-                                if (valB == null) valB = part;
-                                else if (!((countChars(valB, '0') == countChars(part, '0'))&& (countChars(valB, '1') == countChars(part, '1'))))  {
-                                    valid = false;
-                                    break;
-                                }
-                            }
-
-                            index += len;
-                        }
+                // Checkpoint in batches to keep the per-window cost down
+                if (++unreported == CHECKPOINT_INTERVAL) {
+                    if (control.addWindows(unreported)) return null;
+                    unreported = 0;
+                }
+                if (vars.match(table, j, j + i, lengths)) {
+                    control.countWindows(unreported);
+                    System.out.println("Matched candidate: " + str.substring(j, j + i));
+                    System.out.println("from " + j + " to " + (j+i));
+                    System.out.println("ValA: " + str.substring(j, j + lengths[0]));
+                    return new int[] {j, j + i};
+                }
+            }
+        }
+
+        control.countWindows(unreported);
+        return null;
+    }
+
+    /**
+     * Checks if the whole of 'candidate' is an instance of 'pattern',
+     * with Abelian equal segments for each occurrence of a variable.
+     */
+    public static boolean matches(String candidate, String pattern) {
+        if (pattern.isEmpty() || pattern.length() > candidate.length()) return false;
+
+        Variables vars = new Variables(pattern);
+        return vars.match(new ParikhTable(candidate), 0, candidate.length(), new int[vars.size()]);
+    }
+
+    /**
+     * Checks if 'str' contains an Abelian k-th power, i.e. k consecutive
+     * blocks of equal length with equal letter counts.
+     * Uses prefix sums so each period length is scanned in linear time.
+     */
+    public static boolean testAbelianPower(String str, int k) {
+        return findAbelianPower(str, k) != null;
+    }
+
+    /**
+     * Finds the shortest, then leftmost, Abelian k-th power in 'str'.
+     * Returns the witness as {from, to}, or null if there is none.
+     */
+    public static int[] findAbelianPower(String str, int k) {
+        if (k < 1 || str.length() < k) return null;
+        return findAbelianPower(str, new ParikhTable(str), k, new RunControl());
+    }
+
+    private static int[] findAbelianPower(String str, ParikhTable table, int k, RunControl control) {
+        int n = str.length();
+        if (k < 1 || n < k) return null;
+
+        if (k == 1) return reportPower(str, 0, 1, 1);
+
+        int[] run = new int[n / k];
+
+        // Shortest period first, then leftmost start, as in the general search
+        for (int p = 1; p * k <= n; p++) {
+            if (control.addWindows(n - 2 * p + 1)) return null;
+
+            int start = powerStart(table, k, p, run);
+            if (start >= 0) return reportPower(str, start, start + p * k, p);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the leftmost start of an Abelian k-th power with period p, or -1.
+     * 'run' is scratch space of at least p ints.
+     */
+    private static int powerStart(ParikhTable table, int k, int p, int[] run) {
+        int n = table.length();
+
+        // run[i % p] = number of consecutive Abelian-equal block pairs ending at block [i, i + p);
+        // it only builds on the count for block [i - p, i), which is held in the same slot
+        for (int i = p, slot = 0; i + p <= n; i++) {
+            boolean equal = table.equalBlocks(i - p, i, p);
+            run[slot] = equal ? (i >= 2 * p ? run[slot] : 0) + 1 : 0;
+
+            if (run[slot] >= k - 1) return i + p - p * k;
+            if (++slot == p) slot = 0;
+        }
+        return -1;
+    }
+
+    private static int[] reportPower(String str, int from, int to, int period) {
+        System.out.println("Matched candidate: " + str.substring(from, to));
+        System.out.println("from " + from + " to " + to);
+        System.out.println("ValA: " + str.substring(from, from + period));
+        return new int[] {from, to};
+    }
+
+    /**
+     * Parallel version of find(str, subStr, control). Start offsets are split into
+     * chunks searched on 'pool' over one shared ParikhTable; a chunk gives up as soon
+     * as a shorter or further-left match is known. The witness is the same one the
+     * sequential search returns; if 'control' stops the search, a match is still
+     * returned when every window ranked before it was searched.
+     */
+    public static int[] findParallel(String str, String subStr, ForkJoinPool pool, RunControl control) {
+        if (subStr.isEmpty() || str.length() < subStr.length()) {
+            return null;
+        }
+
+        ParikhTable table = new ParikhTable(str);
+        if (new Variables(subStr).size() == 1)
+            return findAbelianPowerParallel(str, table, subStr.length(), pool, control);
+        return findParallel(str, subStr, table, pool, control);
+    }
+
+    private static int[] findParallel(String str, String subStr, ParikhTable table,
+                                      ForkJoinPool pool, RunControl control) {
+        int n = str.length();
+        AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+        AtomicLong abandoned = new AtomicLong(Long.MAX_VALUE);
+        int grain = Math.max(64, n / (pool.getParallelism() * 16));
+
+        pool.invoke(new WindowSearch(table, subStr, 0, n - subStr.length() + 1, grain, best, abandoned, control));
+        if (best.get() > abandoned.get() || best.get() == Long.MAX_VALUE) return null;
+
+        int i = (int) (best.get() >>> 32);
+        int j = (int) best.get();
+        Variables vars = new Variables(subStr);
+        int[] lengths = new int[vars.size()];
+        vars.match(table, j, j + i, lengths);
+
+        System.out.println("Matched candidate: " + str.substring(j, j + i));
+        System.out.println("from " + j + " to " + (j+i));
+        System.out.println("ValA: " + str.substring(j, j + lengths[0]));
+        return new int[] {j, j + i};
+    }
+
+    private static int[] findAbelianPowerParallel(String str, ParikhTable table, int k,
+                                                  ForkJoinPool pool, RunControl control) {
+        int n = str.length();
+        if (k < 1 || n < k) return null;
+        if (k == 1) return reportPower(str, 0, 1, 1);
+
+        AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+        AtomicLong abandoned = new AtomicLong(Long.MAX_VALUE);
+        int periods = n / k;
+        int grain = Math.max(1, periods / (pool.getParallelism() * 16));
+
+        pool.invoke(new PowerSearch(table, k, 1, periods + 1, grain, best, abandoned, control));
+        if (best.get() > abandoned.get() || best.get() == Long.MAX_VALUE) return null;
+
+        int p = (int) (best.get() >>> 32);
+        int start = (int) best.get();
+        return reportPower(str, start, start + p * k, p);
+    }
+
+    /** Packs a match so that shorter, then further-left, matches compare smaller. */
+    private static long rank(int major, int start) {
+        return ((long) major << 32) | start;
+    }
 
-                        if (valid && ((valA != null && countSubB == 0) || (valB != null && countSubA == 0) || (valA != null && valB != null))) {
-                            System.out.println("Matched candidate: " + candidate);
-                            System.out.println("from " + j + " to " + (j+i));
-                            System.out.println("ValA: " + valA);
-                            return true;
+    // ---------------- nested WindowSearch class ----------------
+    /** Searches the windows starting in [lo, hi), shortest windows first. */
+    private static class WindowSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ParikhTable table; // shared, read-only
+        private final String pattern;
+        private final int lo, hi, grain;
+        private final AtomicLong best;   // rank of the best match found by any chunk
+        private final AtomicLong abandoned; // lowest rank left unsearched by a stopped chunk
+        private final RunControl control;
+
+        WindowSearch(ParikhTable table, String pattern, int lo, int hi, int grain,
+                     AtomicLong best, AtomicLong abandoned, RunControl control) {
+            this.table = table;
+            this.pattern = pattern;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+            this.best = best;
+            this.abandoned = abandoned;
+            this.control = control;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > grain) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new WindowSearch(table, pattern, lo, mid, grain, best, abandoned, control),
+                          new WindowSearch(table, pattern, mid, hi, grain, best, abandoned, control));
+                return;
+            }
+
+            int n = table.length();
+            Variables vars = new Variables(pattern); // per chunk, as it holds scratch space
+            int[] lengths = new int[vars.size()];
+            int unreported = 0;
+
+            for (int i = pattern.length(); i <= n - lo; i++) {
+                // Every window left in this chunk ranks after a match already found
+                if (rank(i, lo) > best.get()) break;
+
+                int end = Math.min(hi, n - i + 1);
+                for (int j = lo; j < end; j++) {
+                    if (++unreported == CHECKPOINT_INTERVAL) {
+                        if (control.addWindows(unreported)) {
+                            abandoned.accumulateAndGet(rank(i, j), Math::min);
+                            return;
                         }
+                        unreported = 0;
+                    }
+                    if (vars.match(table, j, j + i, lengths)) {
+                        best.accumulateAndGet(rank(i, j), Math::min);
+                        control.countWindows(unreported);
+                        return;
                     }
                 }
             }
+            control.countWindows(unreported);
         }
+    }
+    // ----------- end of nested WindowSearch class -----------
+
+    // ---------------- nested PowerSearch class ----------------
+    /** Searches for Abelian k-th powers with periods in [lo, hi), shortest first. */
+    private static class PowerSearch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ParikhTable table; // shared, read-only
+        private final int k, lo, hi, grain;
+        private final AtomicLong best;   // rank of the best match found by any chunk
+        private final AtomicLong abandoned; // lowest rank left unsearched by a stopped chunk
+        private final RunControl control;
+
+        PowerSearch(ParikhTable table, int k, int lo, int hi, int grain,
+                    AtomicLong best, AtomicLong abandoned, RunControl control) {
+            this.table = table;
+            this.k = k;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+            this.best = best;
+            this.abandoned = abandoned;
+            this.control = control;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > grain) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new PowerSearch(table, k, lo, mid, grain, best, abandoned, control),
+                          new PowerSearch(table, k, mid, hi, grain, best, abandoned, control));
+                return;
+            }
 
-        return false;
+            int n = table.length();
+            int[] run = new int[hi - 1]; // scratch for the longest period of this chunk
+            for (int p = lo; p < hi; p++) {
+                if (rank(p, 0) > best.get()) return;
+                if (control.addWindows(n - 2 * p + 1)) {
+                    abandoned.accumulateAndGet(rank(p, 0), Math::min);
+                    return;
+                }
+
+                int start = powerStart(table, k, p, run);
+                if (start >= 0) {
+                    best.accumulateAndGet(rank(p, start), Math::min);
+                    return;
+                }
+            }
+        }
     }
+    // ----------- end of nested PowerSearch class -----------
+
+    // ---------------- nested Variables class ----------------
+    /** The variables of a pattern, numbered in order of first occurrence. */
+    private static class Variables {
+        private final int[] sequence; // variable number at each position of the pattern
+        private final int[] counts;   // occurrences of each variable
+        private final int[] first;    // scratch: offset of the first occurrence of each variable
+
+        Variables(String pattern) {
+            char[] names = new char[pattern.length()];
+            int size = 0;
+            sequence = new int[pattern.length()];
+            for (int i = 0; i < pattern.length(); i++) {
+                char ch = pattern.charAt(i);
+                int v = 0;
+                while (v < size && names[v] != ch) v++;
+                if (v == size) names[size++] = ch;
+                sequence[i] = v;
+            }
+            counts = new int[size];
+            for (int v : sequence) counts[v]++;
+            first = new int[size];
+        }
 
-    private static int countChars(String s, char c) {
-        int count = 0;
-        for (char ch : s.toCharArray()) {
-            if (ch == c) count++;
+        int size() { return counts.length; }
+
+        /**
+         * Tries the segment lengths of word[from, to) in increasing order of the first
+         * variable's length, then the second's, and so on; the last variable's length
+         * is implied by the total. Fills 'lengths' and returns true on a match.
+         */
+        boolean match(ParikhTable table, int from, int to, int[] lengths) {
+            return assign(table, from, to, lengths, 0, to - from);
+        }
+
+        private boolean assign(ParikhTable table, int from, int to, int[] lengths, int v, int remaining) {
+            int last = counts.length - 1;
+            if (v == last) {
+                if (remaining <= 0 || remaining % counts[v] != 0) return false;
+                lengths[v] = remaining / counts[v];
+                return check(table, from, lengths);
+            }
+
+            // Leave at least one letter for each later variable occurrence
+            int reserve = 0;
+            for (int u = v + 1; u <= last; u++) reserve += counts[u];
+
+            for (int len = 1; counts[v] * len + reserve <= remaining; len++) {
+                lengths[v] = len;
+                if (assign(table, from, to, lengths, v + 1, remaining - counts[v] * len))
+                    return true;
+            }
+            return false;
+        }
+
+        private boolean check(ParikhTable table, int from, int[] lengths) {
+            Arrays.fill(first, -1);
+            int index = from;
+            for (int v : sequence) {
+                if (first[v] < 0) first[v] = index;
+                else if (!table.equalBlocks(first[v], index, lengths[v])) return false;
+                index += lengths[v];
+            }
+            return true;
         }
-        return count;
     }
+    // ----------- end of nested Variables class -----------
 
     public static boolean checkTwoChar(String a) {
         Map<Character, Integer> charMap = new HashMap<>();
@@ -129,19 +434,91 @@ public class Pattern {
      * matching the given pattern.
      */
     public static ArrayList<String> method(String pattern, String w, String A, String B) {
+        return method(pattern, w, A, B, null);
+    }
+
+    /**
+     * Same as method(pattern, w, A, B), but looks up each iterate in 'cache'
+     * first and only tests iterates whose result is not cached yet.
+     * The cache is saved before returning; pass null to disable caching.
+     */
+    public static ArrayList<String> method(String pattern, String w, String A, String B,
+                                           ResultCache cache) {
+        return method(pattern, w, new String[] {A, B}, cache);
+    }
+
+    /**
+     * Same as method(pattern, w, A, B, cache) for a morphism over k letters,
+     * where letter '0' + i is mapped to images[i].
+     */
+    public static ArrayList<String> method(String pattern, String w, String[] images,
+                                           ResultCache cache) {
+        return method(pattern, w, images, cache, new RunControl());
+    }
+
+    /**
+     * Same as method(pattern, w, images, cache), reporting progress to 'control'.
+     * When 'control' asks the run to stop, the strings matched so far are returned;
+     * an iterate whose search was interrupted before finding a match is not cached.
+     */
+    public static ArrayList<String> method(String pattern, String w, String[] images,
+                                           ResultCache cache, RunControl control) {
+        return method(pattern, w, images, 1, cache, control);
+    }
+
+    /**
+     * Same as method(pattern, w, images, cache, control), but starts testing at
+     * iterate 'start'; earlier iterates are neither tested nor generated.
+     * Iterate lengths are computed up front from the morphism's incidence matrix,
+     * so a morphism that never grows past MAX_ITERATE_LENGTH is rejected at once.
+     *
+     * @throws IllegalArgumentException if the iterates of 'w' do not grow, or if
+     *         'start' is past the last iterate within MAX_ITERATE_LENGTH
+     */
+    public static ArrayList<String> method(String pattern, String w, String[] images, int start,
+                                           ResultCache cache, RunControl control) {
+        if (start < 1) throw new IllegalArgumentException("start must be at least 1");
+
         ArrayList<String> list = new ArrayList<>();
-        String previousNew = w;
+        Morphism morphism = new Morphism(images);
 
-        while (previousNew.length() <= 5000) {
-            String newS = morphism(A, B, previousNew);
-            previousNew = newS;
+        // lengths[i] is the length of iterate i; the last one is the first past the limit
+        long[] lengths = morphism.iterateLengths(w, MAX_ITERATE_LENGTH);
+        if (start > 1 && start >= lengths.length)
+            throw new IllegalArgumentException("start " + start + " is past the last iterate; only "
+                    + (lengths.length - 1) + " iterates of \"" + w + "\" are available");
+        String previousNew = null;
+
+        for (int iterate = start; iterate < lengths.length && !control.shouldStop(); iterate++) {
+            previousNew = previousNew == null
+                    ? morphism.iterate(w, iterate)
+                    : morphism.apply(previousNew, (int) lengths[iterate]);
+            control.setCurrentDepth(iterate);
+            control.setCurrentLength(previousNew.length());
+
+            int[] witness;
+            String key = cache == null ? null : ResultCache.key(pattern, w, images, iterate);
+            ResultCache.Entry cached = cache == null ? null : cache.get(key);
+
+            if (cached != null) {
+                witness = cached.witness();
+                if (witness != null) {
+                    System.out.println("Cached match from " + witness[0] + " to " + witness[1]);
+                }
+            } else {
+                witness = find(previousNew, pattern, control);
+                if (witness == null && control.isStopped()) break;
+                if (cache != null) cache.put(key, witness);
+            }
 
-            if (test(previousNew, pattern)) {
+            if (witness != null) {
                 System.out.println("Matched String: " + previousNew);
                 System.out.println();
                 list.add(previousNew);  
             }
         }
+
+        if (cache != null) cache.save();
         return list;
     }
 
@@ -149,14 +526,14 @@ public class Pattern {
      * Applies morphism rules replacing '0' with A and '1' with B.
      */
     public static String morphism(String A, String B, String old) {
-        StringBuilder newS = new StringBuilder();
-        for (int i = 0; i < old.length(); i++) {
-            if (old.charAt(i) == '0') {
-                newS.append(A);
-            } else if (old.charAt(i) == '1') {
-                newS.append(B);
-            }
-        }
-        return newS.toString();
+        return morphism(new String[] {A, B}, old);
+    }
+
+    /**
+     * Applies morphism rules replacing letter '0' + i with images[i];
+     * characters outside the k-letter alphabet are dropped.
+     */
+    public static String morphism(String[] images, String old) {
+        return new Morphism(images).apply(old);
     }
 }
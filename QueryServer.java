@@ -0,0 +1,284 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Long-lived server answering queries about the allowed words of a filtered tree,
+ * so the tree is built (or loaded) once and shared by any number of queries.
+ *
+ * The tree is flattened into arrays, and every node stores, for each length up to
+ * the build limit, how many allowed words its subtree holds. A prefix query walks
+ * |p| edges and then reads the answer, or enumerates the subtree for listings.
+ *
+ * Usage: java QueryServer [--index tree.bin] [--save-index tree.bin] [--port N]
+ * Without --index the tree is built with Driver.buildFilteredBinaryTree("A", "B").
+ * Without --port queries are read from stdin, one per line:
+ *
+ *   HAS w          true if w is an allowed word of the index
+ *   COUNT p [n]    number of allowed words starting with p (of length n)
+ *   LIST p [n]     those words, one per line, followed by a line "."
+ *   INFO           index size and labels
+ *   QUIT           end the session
+ *
+ * "-" stands for the empty word. Errors are answered with "ERR message".
+ */
+public class QueryServer {
+
+    private final String first;      // label appended by a left edge
+    private final String second;     // label appended by a right edge
+    private final int size;          // number of nodes; node 0 is the root
+    private final int[] left;        // left child of each node, or -1
+    private final int[] right;       // right child of each node, or -1
+    private final int maxLength;     // length limit the tree was built with
+    private final int[] counts;      // counts[x * (maxLength + 1) + n] = words of length n below x (x included)
+
+    /**
+     * Indexes 'tree', built up to strings of length 'maxLength', in which a left child's
+     * string is its parent's string plus 'first' and a right child's is its parent's
+     * string plus 'second'. Neither label may be a prefix of the other, so every word
+     * spells out at most one path.
+     */
+    public QueryServer(BinaryTree<String> tree, String first, String second, int maxLength) {
+        if (first.startsWith(second) || second.startsWith(first))
+            throw new IllegalArgumentException("Labels \"" + first + "\" and \"" + second
+                    + "\" must not be prefixes of each other");
+        this.first = first;
+        this.second = second;
+        this.size = tree.size();
+        this.left = new int[size];
+        this.right = new int[size];
+        int[] parent = new int[size];
+        int[] length = new int[size];
+
+        // Breadth-first numbering, so every parent comes before its children
+        int longest = 0;
+        if (size > 0) {
+            Queue<Position<String>> queue = new LinkedList<>();
+            queue.add(tree.root());
+            parent[0] = -1;
+            length[0] = tree.root().getElement().length();
+            int next = 1;
+            for (int x = 0; !queue.isEmpty(); x++) {
+                Position<String> p = queue.poll();
+                longest = Math.max(longest, length[x]);
+                left[x] = right[x] = -1;
+
+                Position<String> l = tree.left(p);
+                if (l != null) {
+                    left[x] = next;
+                    parent[next] = x;
+                    length[next++] = length[x] + first.length();
+                    queue.add(l);
+                }
+                Position<String> r = tree.right(p);
+                if (r != null) {
+                    right[x] = next;
+                    parent[next] = x;
+                    length[next++] = length[x] + second.length();
+                    queue.add(r);
+                }
+            }
+        }
+        if (longest > maxLength)
+            throw new IllegalArgumentException("Tree holds a word of length " + longest
+                    + ", longer than its limit " + maxLength);
+        this.maxLength = maxLength;
+
+        // Children have larger numbers, so a reverse sweep finishes each subtree before its parent
+        int width = maxLength + 1;
+        this.counts = new int[size * width];
+        for (int x = size - 1; x >= 0; x--) {
+            counts[x * width + length[x]]++;
+            if (parent[x] >= 0) {
+                for (int n = 0; n < width; n++)
+                    counts[parent[x] * width + n] += counts[x * width + n];
+            }
+        }
+    }
+
+    // ---------------- queries ----------------
+
+    /** Returns the length limit the tree was built with. */
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /** Returns true if 'word' is an allowed word of the index. */
+    public boolean contains(String word) {
+        return find(word) >= 0;
+    }
+
+    /** Returns the number of allowed words of length 'n' that start with 'prefix'. */
+    public int count(String prefix, int n) {
+        int x = find(prefix);
+        if (x < 0 || n < 0 || n > maxLength) return 0;
+        return counts[x * (maxLength + 1) + n];
+    }
+
+    /** Returns the number of allowed words that start with 'prefix'. */
+    public int count(String prefix) {
+        int x = find(prefix);
+        if (x < 0) return 0;
+        int total = 0;
+        for (int n = 0; n <= maxLength; n++)
+            total += counts[x * (maxLength + 1) + n];
+        return total;
+    }
+
+    /**
+     * Returns the allowed words that start with 'prefix', in preorder;
+     * only those of length 'n', or all of them if n is negative.
+     */
+    public List<String> extensions(String prefix, int n) {
+        List<String> words = new ArrayList<>();
+        int x = find(prefix);
+        if (x >= 0) collect(x, new StringBuilder(prefix), n, words);
+        return words;
+    }
+
+    private void collect(int x, StringBuilder word, int n, List<String> words) {
+        // Skip subtrees holding no word of the requested length
+        if (n >= 0 && (n > maxLength || counts[x * (maxLength + 1) + n] == 0)) return;
+
+        if (n < 0 || word.length() == n) words.add(word.toString());
+        int mark = word.length();
+        if (left[x] >= 0) {
+            collect(left[x], word.append(first), n, words);
+            word.setLength(mark);
+        }
+        if (right[x] >= 0) {
+            collect(right[x], word.append(second), n, words);
+            word.setLength(mark);
+        }
+    }
+
+    /** Returns the node whose word is 'word', or -1 if there is none. */
+    private int find(String word) {
+        if (size == 0) return -1;
+        int x = 0;
+        int pos = 0;
+        // Neither label is a prefix of the other, so at most one edge can match
+        while (pos < word.length()) {
+            if (left[x] >= 0 && word.startsWith(first, pos)) {
+                x = left[x];
+                pos += first.length();
+            } else if (right[x] >= 0 && word.startsWith(second, pos)) {
+                x = right[x];
+                pos += second.length();
+            } else {
+                return -1;
+            }
+        }
+        return x;
+    }
+
+    // ---------------- protocol ----------------
+
+    /** Answers queries from 'in' on 'out' until QUIT or the end of input. */
+    public void serve(BufferedReader in, PrintWriter out) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] fields = line.trim().split("\\s+");
+            String command = fields[0].toUpperCase();
+            if (command.isEmpty()) continue;
+            if (command.equals("QUIT")) break;
+
+            try {
+                switch (command) {
+                    case "HAS" -> {
+                        String word = word(fields, 1);
+                        if (word.length() > maxLength)
+                            out.println("ERR words longer than " + maxLength + " are not indexed");
+                        else
+                            out.println(contains(word));
+                    }
+                    case "COUNT" -> out.println(fields.length > 2
+                            ? count(word(fields, 1), Integer.parseInt(fields[2]))
+                            : count(word(fields, 1)));
+                    case "LIST" -> {
+                        int n = fields.length > 2 ? Integer.parseInt(fields[2]) : -1;
+                        for (String w : extensions(word(fields, 1), n))
+                            out.println(w.isEmpty() ? "-" : w);
+                        out.println(".");
+                    }
+                    case "INFO" -> out.println("nodes " + size + " maxLength " + maxLength
+                            + " first " + first + " second " + second);
+                    default -> out.println("ERR unknown command " + fields[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                out.println("ERR " + e.getMessage());
+            }
+            out.flush();
+        }
+        out.flush();
+    }
+
+    private static String word(String[] fields, int i) {
+        if (fields.length <= i) throw new IllegalArgumentException("missing word");
+        return fields[i].equals("-") ? "" : fields[i];
+    }
+
+    /** Accepts connections on the loopback interface, serving each on its own thread. */
+    public void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket client = server.accept();
+                Thread session = new Thread(() -> {
+                    try (Socket s = client;
+                         BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                         PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+                        serve(in, out);
+                    } catch (IOException e) {
+                        System.err.println("Session ended: " + e.getMessage());
+                    }
+                });
+                session.start();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String index = null;
+        String saveIndex = null;
+        int port = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--index" -> index = args[++i];
+                case "--save-index" -> saveIndex = args[++i];
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        QueryServer server;
+        if (index != null) {
+            SuccinctBinaryTree tree = SuccinctBinaryTree.load(Paths.get(index));
+            server = new QueryServer(tree, tree.first(), tree.second(), tree.maxLength());
+        } else {
+            LinkedBinaryTree<String> tree = Driver.buildFilteredBinaryTree("A", "B");
+            if (saveIndex != null) SuccinctBinaryTree.write(tree, "A", "B", Driver.MAX_LENGTH, Paths.get(saveIndex));
+            server = new QueryServer(tree, "A", "B", Driver.MAX_LENGTH);
+        }
+        System.err.println("Index ready in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        if (port >= 0) {
+            server.listen(port);
+        } else {
+            server.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                         new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk cache of Pattern.test results for morphic iterates.
+ * Entries are keyed by a hash of the pattern, the seed, the morphism and
+ * the iterate index, and store whether the iterate matched and where.
+ * Once more than maxEntries results are held, the least recently used
+ * entry is evicted.
+ */
+public class ResultCache {
+
+    // ---------------- nested Entry class ----------------
+    /** A cached test result: the witness {from, to}, or null for no match. */
+    public static class Entry {
+        private final int[] witness;
+
+        public Entry(int[] witness) {
+            this.witness = witness;
+        }
+
+        public boolean matched() { return witness != null; }
+
+        public int[] witness() { return witness; }
+    }
+    // ----------- end of nested Entry class -----------
+
+    // Hashed into every key; bump it whenever Pattern.find can answer differently,
+    // so results cached by older versions are never returned
+    // (2: patterns with more than two variables became searchable)
+    static final int RESULT_VERSION = 2;
+
+    private final Path file;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Entry> entries;
+
+    /** Creates a cache backed by 'file', loading any entries it already holds. */
+    public ResultCache(Path file, int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive");
+        this.file = file;
+        this.maxEntries = maxEntries;
+        // access order, so iteration runs from least to most recently used
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ResultCache.this.maxEntries;
+            }
+        };
+        load();
+    }
+
+    /** Returns the key for iterate 'iterate' of seed 'w' under the morphism (A, B). */
+    public static String key(String pattern, String w, String A, String B, int iterate) {
+        return key(pattern, w, new String[] {A, B}, iterate);
+    }
+
+    /** Returns the key for iterate 'iterate' of seed 'w' under the k-letter morphism 'images'. */
+    public static String key(String pattern, String w, String[] images, int iterate) {
+        String[] fields = new String[images.length + 4];
+        fields[0] = Integer.toString(RESULT_VERSION);
+        fields[1] = pattern;
+        fields[2] = w;
+        System.arraycopy(images, 0, fields, 3, images.length);
+        fields[fields.length - 1] = Integer.toString(iterate);
+        return hash(fields);
+    }
+
+    /** Returns the cached result for 'key', or null if it is not cached. */
+    public Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /** Stores the witness (or null for no match) found for 'key'. */
+    public void put(String key, int[] witness) {
+        entries.put(key, new Entry(witness));
+    }
+
+    /** Returns the number of cached results. */
+    public int size() {
+        return entries.size();
+    }
+
+    /** Writes the cache to its file, least recently used entries first. */
+    public void save() {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                int[] witness = e.getValue().witness();
+                out.write(e.getKey());
+                if (witness == null) {
+                    out.write(" -");
+                } else {
+                    out.write(" " + witness[0] + " " + witness[1]);
+                }
+                out.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write cache " + temp, e);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not replace cache " + file, e);
+        }
+    }
+
+    /** Reads the cache file, if any; an unreadable file leaves the cache empty. */
+    private void load() {
+        if (!Files.exists(file)) return;
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length == 2 && fields[1].equals("-")) {
+                    put(fields[0], null);
+                } else if (fields.length == 3) {
+                    put(fields[0], new int[] {Integer.parseInt(fields[1]), Integer.parseInt(fields[2])});
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Ignoring unreadable cache " + file + ": " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    /** Returns the hex SHA-256 of the given fields, separated so they cannot run together. */
+    private static String hash(String... fields) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String field : fields) {
+                digest.update(field.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Progress counters, budgets and cooperative cancellation for a single run.
+ * Hot loops report their work through addNodes/addWindows, which return true
+ * once the run should stop; the caller then returns what it has so far.
+ * The counters are safe to update from several threads.
+ */
+public class RunControl implements RunControlMBean {
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong windows = new AtomicLong();
+
+    private volatile int currentDepth;
+    private volatile long currentLength;
+    private volatile long timeBudgetNanos = Long.MAX_VALUE;
+    private volatile long workBudget = Long.MAX_VALUE;
+    private volatile String stopReason; // null while the run may continue
+
+    private ObjectName registeredName;
+
+    /** Creates a control with no budgets. */
+    public RunControl() {}
+
+    /** Registers this control with the platform MBean server under 'name'. */
+    public void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("PatternPulse:type=RunControl,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register RunControl " + name, e);
+        }
+    }
+
+    /** Removes this control from the platform MBean server, if it was registered. */
+    public void unregister() {
+        if (registeredName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister RunControl " + registeredName, e);
+        }
+    }
+
+    // ---------------- hot-loop checkpoints ----------------
+
+    /** Records 'n' processed tree nodes; returns true if the run should stop. */
+    public boolean addNodes(long n) {
+        nodes.addAndGet(n);
+        return shouldStop();
+    }
+
+    /** Records 'n' processed pattern windows; returns true if the run should stop. */
+    public boolean addWindows(long n) {
+        windows.addAndGet(n);
+        return shouldStop();
+    }
+
+    /**
+     * Records 'n' processed pattern windows without checking the budgets,
+     * for the tail of a search that has already finished.
+     */
+    public void countWindows(long n) {
+        windows.addAndGet(n);
+    }
+
+    /** Returns true if the run was cancelled or has used up a budget. */
+    public boolean shouldStop() {
+        if (stopReason != null) return true;
+        if (nodes.get() + windows.get() > workBudget) {
+            stop("work budget exhausted");
+        } else if (System.nanoTime() - startNanos > timeBudgetNanos) {
+            stop("time budget exhausted");
+        }
+        return stopReason != null;
+    }
+
+    /** Returns true if the run has stopped early. */
+    public boolean isStopped() {
+        return stopReason != null;
+    }
+
+    /** Records the current tree depth or iterate index. */
+    public void setCurrentDepth(int depth) { currentDepth = depth; }
+
+    /** Records the length of the current string or iterate. */
+    public void setCurrentLength(long length) { currentLength = length; }
+
+    private synchronized void stop(String reason) {
+        if (stopReason == null) stopReason = reason;
+    }
+
+    // ---------------- RunControlMBean ----------------
+
+    public int getCurrentDepth() { return currentDepth; }
+
+    public long getCurrentLength() { return currentLength; }
+
+    public long getNodesProcessed() { return nodes.get(); }
+
+    public long getWindowsProcessed() { return windows.get(); }
+
+    public double getRate() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? (nodes.get() + windows.get()) / seconds : 0;
+    }
+
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    public String getStopReason() { return stopReason; }
+
+    public void cancel() { stop("cancelled"); }
+
+    public void setTimeBudgetMillis(long millis) {
+        timeBudgetNanos = millis < Long.MAX_VALUE / 1_000_000 ? millis * 1_000_000 : Long.MAX_VALUE;
+    }
+
+    public void setWorkBudget(long units) { workBudget = units; }
+}
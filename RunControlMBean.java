@@ -0,0 +1,36 @@
+/**
+ * Management interface of RunControl, for watching and stopping a long
+ * tree build or morphism sweep from JConsole or any other JMX client.
+ */
+public interface RunControlMBean {
+
+    /** Returns the current tree depth, or the index of the current iterate. */
+    int getCurrentDepth();
+
+    /** Returns the length of the current string or iterate. */
+    long getCurrentLength();
+
+    /** Returns the number of tree nodes processed so far. */
+    long getNodesProcessed();
+
+    /** Returns the number of pattern windows processed so far. */
+    long getWindowsProcessed();
+
+    /** Returns nodes plus windows processed per second since the run started. */
+    double getRate();
+
+    /** Returns the milliseconds elapsed since the run started. */
+    long getElapsedMillis();
+
+    /** Returns why the run stopped early, or null if it has not. */
+    String getStopReason();
+
+    /** Asks the run to stop at its next checkpoint and return partial results. */
+    void cancel();
+
+    /** Stops the run once it has taken more than 'millis' milliseconds of wall-clock time. */
+    void setTimeBudgetMillis(long millis);
+
+    /** Stops the run once it has processed more than 'units' nodes plus windows. */
+    void setWorkBudget(long units);
+}
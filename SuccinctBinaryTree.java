@@ -0,0 +1,322 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Read-only binary tree of strings stored as a level-order bit sequence
+ * (a LOUDS-style encoding), memory-mapped from a file.
+ *
+ * Nodes are numbered in breadth-first order, and node x owns bits 2x and 2x+1,
+ * which tell whether it has a left and a right child. A left child's string is
+ * its parent's string followed by 'first', and a right child's is followed by
+ * 'second', as in Driver.buildFilteredBinaryTree, so strings are not stored.
+ * The file takes about two bits per node, plus a short header.
+ *
+ * File layout (little-endian): magic, version, node count, the length limit
+ * the tree was built with, the two labels as length-prefixed UTF-8, padding
+ * to 8 bytes, then the bits in 64-bit words.
+ */
+public class SuccinctBinaryTree extends AbstractBinaryTree<String> {
+
+    private static final int MAGIC = 0x50504c54; // "PPLT"
+    private static final int VERSION = 2;
+
+    // ---------------- nested Node class ----------------
+    /** A position identified by its breadth-first index; its string is rebuilt on demand. */
+    protected static class Node implements Position<String> {
+        private final SuccinctBinaryTree tree;
+        private final int index;
+
+        Node(SuccinctBinaryTree tree, int index) {
+            this.tree = tree;
+            this.index = index;
+        }
+
+        public String getElement() { return tree.wordOf(index); }
+
+        public int getIndex() { return index; }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Node && ((Node) o).tree == tree && ((Node) o).index == index;
+        }
+
+        @Override
+        public int hashCode() { return index; }
+    }
+    // ----------- end of nested Node class -----------
+
+    private final ByteBuffer data;  // mapped file
+    private final int bitsOffset;   // byte offset of the first bit word
+    private final int size;         // number of nodes
+    private final int maxLength;    // length limit the tree was built with
+    private final String first;     // label appended by a left edge
+    private final String second;    // label appended by a right edge
+    private final int[] rankBefore; // rankBefore[w] = ones in the bit words before word w
+
+    private SuccinctBinaryTree(ByteBuffer data, int bitsOffset, int size, int maxLength,
+                               String first, String second) {
+        this.data = data;
+        this.bitsOffset = bitsOffset;
+        this.size = size;
+        this.maxLength = maxLength;
+        this.first = first;
+        this.second = second;
+
+        int words = wordCount(size);
+        rankBefore = new int[words + 1];
+        for (int w = 0; w < words; w++)
+            rankBefore[w + 1] = rankBefore[w] + Long.bitCount(word(w));
+    }
+
+    // ---------------- persistence ----------------
+
+    /**
+     * Writes 'tree', built up to strings of length 'maxLength', to 'file'. Every left
+     * child's string must be its parent's string plus 'first', and every right child's
+     * its parent's string plus 'second'.
+     */
+    public static void write(BinaryTree<String> tree, String first, String second, int maxLength,
+                             Path file) throws IOException {
+        int size = tree.size();
+        long[] bits = new long[wordCount(size)];
+
+        // Breadth-first numbering, so children are numbered in the order their bits appear
+        if (size > 0) {
+            Queue<Position<String>> queue = new LinkedList<>();
+            queue.add(tree.root());
+            int index = 0;
+            while (!queue.isEmpty()) {
+                Position<String> p = queue.poll();
+                Position<String> left = tree.left(p);
+                Position<String> right = tree.right(p);
+                long b = 2L * index++;
+                if (left != null) {
+                    checkLabel(p, left, first);
+                    bits[(int) (b >>> 6)] |= 1L << (b & 63);
+                    queue.add(left);
+                }
+                if (right != null) {
+                    checkLabel(p, right, second);
+                    bits[(int) ((b + 1) >>> 6)] |= 1L << ((b + 1) & 63);
+                    queue.add(right);
+                }
+            }
+        }
+
+        byte[] firstBytes = first.getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = second.getBytes(StandardCharsets.UTF_8);
+        int bitsOffset = align(24 + firstBytes.length + secondBytes.length);
+
+        ByteBuffer out = ByteBuffer.allocate(bitsOffset + 8 * bits.length).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(maxLength);
+        out.putInt(firstBytes.length).put(firstBytes);
+        out.putInt(secondBytes.length).put(secondBytes);
+        out.position(bitsOffset);
+        for (long w : bits) out.putLong(w);
+        out.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) channel.write(out);
+        }
+    }
+
+    /** Memory-maps a tree written by write(). */
+    public static SuccinctBinaryTree load(Path file) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        try {
+            if (data.getInt() != MAGIC) throw new IOException("Not a tree file: " + file);
+            int version = data.getInt();
+            if (version != VERSION) throw new IOException("Unsupported tree file version " + version + ": " + file);
+            int size = data.getInt();
+            int maxLength = data.getInt();
+            String first = readLabel(data);
+            String second = readLabel(data);
+            int bitsOffset = align(data.position());
+            if (size < 0 || data.limit() < bitsOffset + 8L * wordCount(size))
+                throw new IOException("Truncated tree file: " + file);
+            return new SuccinctBinaryTree(data, bitsOffset, size, maxLength, first, second);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt tree file: " + file, e);
+        }
+    }
+
+    private static void checkLabel(Position<String> parent, Position<String> child, String label) {
+        if (!child.getElement().equals(parent.getElement() + label))
+            throw new IllegalArgumentException("Child \"" + child.getElement()
+                    + "\" is not its parent's string plus \"" + label + "\"");
+    }
+
+    private static String readLabel(ByteBuffer data) {
+        byte[] bytes = new byte[data.getInt()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    private static int wordCount(int size) {
+        return (int) ((2L * size + 63) >>> 6);
+    }
+
+    // ---------------- bit navigation ----------------
+
+    private long word(int w) {
+        return data.getLong(bitsOffset + 8 * w);
+    }
+
+    private boolean bit(long i) {
+        return ((word((int) (i >>> 6)) >>> (i & 63)) & 1) != 0;
+    }
+
+    /** Returns the number of one bits before bit i. */
+    private int rank(long i) {
+        int w = (int) (i >>> 6);
+        int inWord = (int) (i & 63);
+        int ones = rankBefore[w];
+        if (inWord != 0) ones += Long.bitCount(word(w) & ((1L << inWord) - 1));
+        return ones;
+    }
+
+    /** Returns the position of the j-th one bit, counting from 0. */
+    private long select(int j) {
+        // Last word whose preceding ones are at most j
+        int lo = 0, hi = rankBefore.length - 2;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (rankBefore[mid] <= j) lo = mid;
+            else hi = mid - 1;
+        }
+        long w = word(lo);
+        for (int skip = j - rankBefore[lo]; skip > 0; skip--)
+            w &= w - 1; // clear the lowest one bit
+        return 64L * lo + Long.numberOfTrailingZeros(w);
+    }
+
+    /** Returns the index of the child behind bit i, or -1 if the bit is clear. */
+    private int child(long i) {
+        return bit(i) ? rank(i) + 1 : -1;
+    }
+
+    /** Returns the index of the parent of node x, which must not be the root. */
+    private int parentIndex(int x) {
+        return (int) (select(x - 1) >>> 1);
+    }
+
+    /** Rebuilds the string of node x from the edges on its path to the root. */
+    private String wordOf(int x) {
+        List<String> labels = new ArrayList<>();
+        while (x > 0) {
+            long edge = select(x - 1);
+            labels.add((edge & 1) == 0 ? first : second);
+            x = (int) (edge >>> 1);
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = labels.size() - 1; i >= 0; i--)
+            word.append(labels.get(i));
+        return word.toString();
+    }
+
+    // ---------------- BinaryTree ----------------
+
+    protected Node validate(Position<String> p) throws IllegalArgumentException {
+        if (!(p instanceof Node) || ((Node) p).tree != this)
+            throw new IllegalArgumentException("Not valid position type");
+        return (Node) p;
+    }
+
+    private Node node(int index) {
+        return index < 0 ? null : new Node(this, index);
+    }
+
+    /** Returns the label appended by a left edge. */
+    public String first() { return first; }
+
+    /** Returns the label appended by a right edge. */
+    public String second() { return second; }
+
+    /** Returns the length limit the tree was built with. */
+    public int maxLength() { return maxLength; }
+
+    /** Returns the number of nodes in the tree. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the root Position of the tree (or null if tree is empty). */
+    public Position<String> root() {
+        return size == 0 ? null : node(0);
+    }
+
+    /** Returns the Position of p's parent (or null if p is root). */
+    public Position<String> parent(Position<String> p) throws IllegalArgumentException {
+        int x = validate(p).getIndex();
+        return x == 0 ? null : node(parentIndex(x));
+    }
+
+    /** Returns the Position of p's left child (or null if no child exists). */
+    public Position<String> left(Position<String> p) throws IllegalArgumentException {
+        return node(child(2L * validate(p).getIndex()));
+    }
+
+    /** Returns the Position of p's right child (or null if no child exists). */
+    public Position<String> right(Position<String> p) throws IllegalArgumentException {
+        return node(child(2L * validate(p).getIndex() + 1));
+    }
+
+    @Override
+    public boolean isRoot(Position<String> p) {
+        return validate(p).getIndex() == 0;
+    }
+
+    @Override
+    public Position<String> sibling(Position<String> p) {
+        Position<String> parent = parent(p);
+        if (parent == null) return null; // p must be the root
+        if (p.equals(left(parent))) // p is a left child
+            return right(parent); // (right child might be null)
+        else // p is a right child
+            return left(parent); // (left child might be null)
+    }
+
+    @Override
+    public Iterable<Position<String>> positions() {
+        List<Position<String>> snapshot = new ArrayList<>();
+        if (!isEmpty())
+            preorderSubtree(root(), snapshot);
+        return snapshot;
+    }
+
+    private void preorderSubtree(Position<String> p, List<Position<String>> snapshot) {
+        snapshot.add(p);
+        if (left(p) != null)
+            preorderSubtree(left(p), snapshot);
+        if (right(p) != null)
+            preorderSubtree(right(p), snapshot);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        Iterable<Position<String>> positions = positions();
+        List<String> elements = new ArrayList<>();
+        for (Position<String> p : positions)
+            elements.add(p.getElement());
+        return elements.iterator();
+    }
+}